@@ -0,0 +1,153 @@
+package dboo.study.yhk_querydsl;
+
+import com.querydsl.core.QueryModifiers;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.Getter;
+
+import javax.persistence.QueryTimeoutException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 쿼리 분류별 예산(QueryBudget)을 적용해서 JPAQueryFactory 쿼리를 실행한다.
+ *
+ * ex) governed.fetch("expensive", queryFactory -> queryFactory
+ *         .select(member).from(member, team).where(member.username.eq(team.name)));
+ *
+ * 비싼 쿼리 하나가 커넥션 풀을 다 잡지 못하도록 분류마다 동시 실행 수를 제한하고,
+ * 대기열이 차면 바로 QueryRejectedException 으로 거절한다. 다른 분류의 쿼리는 영향을 받지 않는다.
+ */
+public class GovernedQueryFactory {
+
+    private final JPAQueryFactory queryFactory;
+    private final Map<String, QueryClass> queryClasses;
+
+    public GovernedQueryFactory(JPAQueryFactory queryFactory, List<QueryBudget> budgets) {
+        for (QueryBudget budget : budgets) {
+            if (budget.getTimeoutMillis() <= 0) {
+                throw new IllegalArgumentException("[" + budget.getQueryClass() + "] timeoutMillis 는 0보다 커야 합니다.");
+            }
+        }
+        this.queryFactory = queryFactory;
+        this.queryClasses = budgets.stream()
+                .collect(Collectors.toMap(QueryBudget::getQueryClass, QueryClass::new));
+    }
+
+    public <T> List<T> fetch(String queryClass, Function<JPAQueryFactory, JPAQuery<T>> query) {
+        QueryClass target = queryClass(queryClass);
+        QueryBudget budget = target.budget;
+        Metrics metrics = target.metrics;
+
+        target.acquire();
+        long start = System.nanoTime();
+        try {
+            JPAQuery<T> jpaQuery = query.apply(queryFactory)
+                    .setHint("javax.persistence.query.timeout", budget.getTimeoutSeconds() * 1_000);
+            // maxRows 를 넘는지만 알면 되므로 한 건만 더 가져온다.
+            QueryModifiers modifiers = jpaQuery.getMetadata().getModifiers();
+            if (modifiers.getLimit() == null || modifiers.getLimit() > budget.getMaxRows()) {
+                jpaQuery.limit(budget.getMaxRows() + 1L);
+            }
+
+            List<T> result = jpaQuery.fetch();
+            if (result.size() > budget.getMaxRows()) {
+                metrics.rowLimitExceeded.incrementAndGet();
+                throw new QueryRowLimitExceededException(queryClass, budget.getMaxRows());
+            }
+            metrics.executed.incrementAndGet();
+            return result;
+        } catch (QueryTimeoutException e) {
+            metrics.timedOut.incrementAndGet();
+            throw e;
+        } finally {
+            metrics.totalNanos.addAndGet(System.nanoTime() - start);
+            target.release();
+        }
+    }
+
+    public Metrics metrics(String queryClass) {
+        return queryClass(queryClass).metrics;
+    }
+
+    private QueryClass queryClass(String queryClass) {
+        QueryClass target = queryClasses.get(queryClass);
+        if (target == null) {
+            throw new IllegalArgumentException("등록되지 않은 쿼리 분류입니다. : " + queryClass);
+        }
+        return target;
+    }
+
+    private static class QueryClass {
+
+        private final QueryBudget budget;
+        private final Semaphore permits;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final Metrics metrics = new Metrics();
+
+        QueryClass(QueryBudget budget) {
+            this.budget = budget;
+            this.permits = new Semaphore(budget.getMaxConcurrent());
+        }
+
+        void acquire() {
+            if (permits.tryAcquire()) {
+                metrics.inFlight.incrementAndGet();
+                return;
+            }
+            if (queued.incrementAndGet() > budget.getMaxQueued()) {
+                queued.decrementAndGet();
+                reject("대기열이 가득 찼습니다.");
+            }
+            try {
+                if (!permits.tryAcquire(budget.getMaxWaitMillis(), TimeUnit.MILLISECONDS)) {
+                    reject("대기 시간을 초과했습니다.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                reject("대기 중 인터럽트 되었습니다.");
+            } finally {
+                queued.decrementAndGet();
+            }
+            metrics.inFlight.incrementAndGet();
+        }
+
+        void release() {
+            metrics.inFlight.decrementAndGet();
+            permits.release();
+        }
+
+        private void reject(String reason) {
+            metrics.rejected.incrementAndGet();
+            throw new QueryRejectedException(budget.getQueryClass(), reason);
+        }
+    }
+
+    @Getter
+    public static class Metrics {
+        private final AtomicLong executed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong rowLimitExceeded = new AtomicLong();
+        private final AtomicLong timedOut = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+    }
+
+    public static class QueryRejectedException extends RuntimeException {
+        public QueryRejectedException(String queryClass, String reason) {
+            super("[" + queryClass + "] 쿼리를 거절했습니다. " + reason);
+        }
+    }
+
+    public static class QueryRowLimitExceededException extends RuntimeException {
+        public QueryRowLimitExceededException(String queryClass, int maxRows) {
+            super("[" + queryClass + "] 조회 결과가 " + maxRows + "건을 넘었습니다.");
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package dboo.study.yhk_querydsl;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * MemberQueryRepository.findByIds / findByUsernames 옵션
+ * - chunkSize : 한번의 쿼리에 넣을 최대 키 개수 (1 ~ MAX_CHUNK_SIZE). 2의 거듭제곱으로 두면 IN 절 패딩과 맞는다.
+ * - parallel : 트랜잭션 밖에서 호출하면 청크들을 별도 EntityManager 로 병렬 조회 (커밋된 데이터만 보인다. 동시에 최대 4개)
+ * - postgresArray : PostgreSQL 이면 IN 대신 = any(array) 로 파라미터 하나만 바인딩
+ */
+@Getter
+@Builder
+public class KeyLookup {
+
+    // IN 절 패딩(2의 거듭제곱) 후에도 PostgreSQL 바인드 파라미터 한도(32767)를 넘지 않는 최대 크기
+    public static final int MAX_CHUNK_SIZE = 16_384;
+
+    public static final KeyLookup DEFAULT = KeyLookup.builder().build();
+
+    @Builder.Default
+    private final int chunkSize = 1024;
+
+    private final boolean parallel;
+
+    private final boolean postgresArray;
+}
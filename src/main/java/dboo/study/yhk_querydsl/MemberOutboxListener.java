@@ -0,0 +1,104 @@
+package dboo.study.yhk_querydsl;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Member 의 insert, age 변경, changeTeam 을 OutboxEvent 로 남긴다.
+ *
+ * flush 중에 불리므로 현재 세션에는 persist 하지 않고, 같은 커넥션을 공유하는 자식 세션으로 저장한다.
+ * 커넥션이 같으니 엔티티 변경과 같은 트랜잭션으로 커밋/롤백된다.
+ *
+ * 리스너는 EntityManagerFactory 를 만들 때 Integrator 로 등록한다.
+ * 기동 중에 EntityManagerFactory 를 꺼내 기다리지 않으므로 fast 프로필의 백그라운드 부트스트랩을 막지 않는다.
+ *
+ * outbox.enabled=true 일 때만 등록한다. 발행하는 릴레이(OutboxRelay) 없이 쌓이기만 하지 않도록 기본은 꺼져 있다.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.enabled", havingValue = "true")
+public class MemberOutboxListener implements PostInsertEventListener, PostUpdateEventListener,
+        HibernatePropertiesCustomizer {
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        Integrator integrator = new Integrator() {
+            @Override
+            public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                                  SessionFactoryServiceRegistry serviceRegistry) {
+                EventListenerRegistry registry = serviceRegistry.getService(EventListenerRegistry.class);
+                registry.appendListeners(EventType.POST_INSERT, MemberOutboxListener.this);
+                registry.appendListeners(EventType.POST_UPDATE, MemberOutboxListener.this);
+            }
+
+            @Override
+            public void disintegrate(SessionFactoryImplementor sessionFactory,
+                                     SessionFactoryServiceRegistry serviceRegistry) {
+            }
+        };
+        hibernateProperties.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER,
+                (IntegratorProvider) () -> List.of(integrator));
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Member) {
+            Member member = (Member) event.getEntity();
+            save(event.getSession(), new OutboxEvent(OutboxEventType.MEMBER_CREATED,
+                    member.getId(), member.getAge(), teamId(member)));
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Member) || event.getDirtyProperties() == null) {
+            return;
+        }
+        Member member = (Member) event.getEntity();
+        String[] propertyNames = event.getPersister().getPropertyNames();
+        for (int index : event.getDirtyProperties()) {
+            if ("age".equals(propertyNames[index])) {
+                save(event.getSession(), new OutboxEvent(OutboxEventType.MEMBER_AGE_CHANGED,
+                        member.getId(), member.getAge(), teamId(member)));
+            } else if ("team".equals(propertyNames[index])) {
+                save(event.getSession(), new OutboxEvent(OutboxEventType.MEMBER_TEAM_CHANGED,
+                        member.getId(), member.getAge(), teamId(member)));
+            }
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private void save(EventSource session, OutboxEvent outboxEvent) {
+        try (Session child = session.sessionWithOptions()
+                .connection()
+                .autoClose(false)
+                .flushMode(FlushMode.MANUAL)
+                .openSession()) {
+            child.save(outboxEvent);
+            child.flush();
+        }
+    }
+
+    // 프록시여도 id 조회는 초기화하지 않는다.
+    private Long teamId(Member member) {
+        return member.getTeam() == null ? null : member.getTeam().getId();
+    }
+}
@@ -0,0 +1,245 @@
+package dboo.study.yhk_querydsl;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.dsl.SimpleExpression;
+import com.querydsl.jpa.JPQLQuery;
+import com.querydsl.jpa.hibernate.HibernateQuery;
+import com.querydsl.jpa.impl.JPAQuery;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static dboo.study.yhk_querydsl.QMember.member;
+
+@Repository
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class MemberQueryRepository {
+
+    // topNPerTeam 에서 정렬 가능한 QMember 프로퍼티 -> 컬럼
+    private static final Map<String, String> ORDER_COLUMNS = Map.of(
+            "id", "member_id",
+            "username", "username",
+            "age", "age");
+
+    // 병렬 청크 조회용. 스레드 수만큼만 커넥션을 더 잡는다.
+    private static final int LOOKUP_THREADS = 4;
+
+    private final EntityManager em;
+    private final ExecutorService lookupExecutor = Executors.newFixedThreadPool(LOOKUP_THREADS);
+
+    @PreDestroy
+    public void shutdown() {
+        lookupExecutor.shutdown();
+    }
+
+    public List<Member> findAll(ReadMode mode) {
+        return fetch(mode, query -> query.select(member).from(member));
+    }
+
+    /**
+     * 조회 방식(ReadMode)을 골라서 쿼리를 실행한다.
+     * ex) fetch(ReadMode.READ_ONLY, query -> query.select(member).from(member).where(member.age.gt(10)))
+     *
+     * READ_ONLY, STATELESS 는 대량 조회에서 엔티티 스냅샷과 flush 시 변경 감지 비용을 없앤다.
+     * STATELESS 는 현재 트랜잭션의 커넥션을 그대로 쓰므로 같은 트랜잭션에서 쓴 데이터도 보인다.
+     */
+    public <T> List<T> fetch(ReadMode mode, Function<JPQLQuery<?>, JPQLQuery<T>> query) {
+        Session session = em.unwrap(Session.class);
+        switch (mode) {
+            case READ_ONLY:
+                boolean defaultReadOnly = session.isDefaultReadOnly();
+                FlushMode flushMode = session.getHibernateFlushMode();
+                session.setDefaultReadOnly(true);
+                session.setHibernateFlushMode(FlushMode.MANUAL);
+                try {
+                    return query.apply(new JPAQuery<>(em)).fetch();
+                } finally {
+                    session.setDefaultReadOnly(defaultReadOnly);
+                    session.setHibernateFlushMode(flushMode);
+                }
+            case STATELESS:
+                return session.doReturningWork(connection -> {
+                    StatelessSession statelessSession = session.getSessionFactory().openStatelessSession(connection);
+                    try {
+                        return query.apply(new HibernateQuery<>(statelessSession)).fetch();
+                    } finally {
+                        statelessSession.close();
+                    }
+                });
+            default:
+                return query.apply(new JPAQuery<>(em)).fetch();
+        }
+    }
+
+    // 다건 조회는 트랜잭션을 새로 열지 않는다. (SUPPORTS)
+    // 호출한 쪽이 커넥션을 잡은 채 병렬 청크가 커넥션을 기다리면, 동시 호출이 풀 크기를 넘을 때 서로 막힌다.
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public List<Member> findByIds(Collection<Long> ids) {
+        return findByIds(ids, KeyLookup.DEFAULT);
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public List<Member> findByIds(Collection<Long> ids, KeyLookup lookup) {
+        return findByKeys(ids, member.id, "member_id", "bigint", lookup);
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public List<Member> findByUsernames(Collection<String> usernames) {
+        return findByUsernames(usernames, KeyLookup.DEFAULT);
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public List<Member> findByUsernames(Collection<String> usernames, KeyLookup lookup) {
+        return findByKeys(usernames, member.username, "username", "text", lookup);
+    }
+
+    /**
+     * 키 목록 크기마다 IN 절 SQL 이 달라지면 Hibernate 쿼리 플랜 캐시와 PostgreSQL prepared statement 가 재사용되지 않는다.
+     * 키를 chunkSize 단위로 나누고, 각 청크의 IN 절은 hibernate.query.in_clause_parameter_padding (application.yml) 으로
+     * 2의 거듭제곱 크기로 채워진다. 그러면 SQL 모양은 log2(chunkSize) 가지로 고정된다.
+     *
+     * parallel 이어도 호출한 쪽 트랜잭션이 있으면 그 커넥션으로 순서대로 조회한다.
+     * (트랜잭션 커넥션을 잡은 채 다른 커넥션을 기다리지 않고, 커밋 전 데이터도 보인다.)
+     */
+    private <K> List<Member> findByKeys(Collection<K> keys, SimpleExpression<K> path, String column,
+                                        String arrayType, KeyLookup lookup) {
+        if (lookup.getChunkSize() <= 0 || lookup.getChunkSize() > KeyLookup.MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException(
+                    "chunkSize 는 1 ~ " + KeyLookup.MAX_CHUNK_SIZE + " 사이여야 합니다. : " + lookup.getChunkSize());
+        }
+        List<K> distinctKeys = keys.stream()
+                .filter(key -> key != null)
+                .distinct()
+                .collect(Collectors.toList());
+        List<List<K>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinctKeys.size(); from += lookup.getChunkSize()) {
+            chunks.add(distinctKeys.subList(from, Math.min(from + lookup.getChunkSize(), distinctKeys.size())));
+        }
+
+        boolean anyArray = lookup.isPostgresArray() && isPostgres();
+        boolean parallel = lookup.isParallel() && !TransactionSynchronizationManager.isActualTransactionActive();
+        Function<List<K>, List<Member>> lookupChunk = chunk -> {
+            if (!parallel) {
+                return findChunk(em, chunk, path, column, arrayType, anyArray);
+            }
+            EntityManager chunkEm = em.getEntityManagerFactory().createEntityManager();
+            try {
+                return findChunk(chunkEm, chunk, path, column, arrayType, anyArray);
+            } finally {
+                chunkEm.close();
+            }
+        };
+
+        if (!parallel) {
+            return chunks.stream()
+                    .map(lookupChunk)
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+        }
+        List<CompletableFuture<List<Member>>> futures = chunks.stream()
+                .map(chunk -> CompletableFuture.supplyAsync(() -> lookupChunk.apply(chunk), lookupExecutor))
+                .collect(Collectors.toList());
+        return futures.stream()
+                .map(CompletableFuture::join)
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K> List<Member> findChunk(EntityManager target, List<K> chunk, SimpleExpression<K> path, String column,
+                                       String arrayType, boolean anyArray) {
+        if (anyArray) {
+            return target.createNativeQuery("select * from member m where m." + column
+                            + " = any(cast(:keys as " + arrayType + "[]))", Member.class)
+                    .setParameter("keys", arrayLiteral(chunk))
+                    .getResultList();
+        }
+        return new JPAQuery<>(target)
+                .select(member)
+                .from(member)
+                .where(path.in(chunk))
+                .fetch();
+    }
+
+    // PostgreSQL 배열 리터럴 ex) {"member1","member2"}
+    private static String arrayLiteral(List<?> keys) {
+        return keys.stream()
+                .map(key -> "\"" + key.toString().replace("\\", "\\\\").replace("\"", "\\\"") + "\"")
+                .collect(Collectors.joining(",", "{", "}"));
+    }
+
+    private boolean isPostgres() {
+        EntityManagerFactory emf = em.getEntityManagerFactory();
+        return emf.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect() instanceof PostgreSQL81Dialect;
+    }
+
+    /**
+     * 팀별 상위 n명 ex) topNPerTeam(member.age.desc(), 3) : 팀별로 나이가 가장 많은 3명
+     *
+     * JPQL 은 윈도우 함수를 지원하지 않아서, 팀마다 쿼리를 날리거나 상관 서브쿼리를 쓰게 된다.
+     * 여기서는 row_number() over (partition by team_id ...) 네이티브 쿼리 한번으로 가져온다. (PostgreSQL, H2)
+     * 팀이 없는 회원은 제외하고, 결과는 team_id, 순위 순서.
+     */
+    public List<MemberDto> topNPerTeam(OrderSpecifier<?> order, int n) {
+        String sql = "select ranked.username, ranked.age"
+                + " from (select m.username, m.age, m.team_id,"
+                + "         row_number() over (partition by m.team_id order by " + orderBy(order) + ", m.member_id) as rn"
+                + "       from member m"
+                + "       where m.team_id is not null) ranked"
+                + " where ranked.rn <= :n"
+                + " order by ranked.team_id, ranked.rn";
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = em.createNativeQuery(sql)
+                .setParameter("n", n)
+                .getResultList();
+
+        return rows.stream()
+                .map(row -> new MemberDto((String) row[0], ((Number) row[1]).intValue()))
+                .collect(Collectors.toList());
+    }
+
+    private String orderBy(OrderSpecifier<?> order) {
+        Path<?> parent = order.getTarget() instanceof Path ? ((Path<?>) order.getTarget()).getMetadata().getParent() : null;
+        if (parent == null || !Member.class.equals(parent.getType())) {
+            throw new IllegalArgumentException("member 프로퍼티로만 정렬할 수 있습니다. : " + order);
+        }
+        String property = ((Path<?>) order.getTarget()).getMetadata().getName();
+        String column = ORDER_COLUMNS.get(property);
+        if (column == null) {
+            throw new IllegalArgumentException("정렬할 수 없는 프로퍼티입니다. : " + property);
+        }
+
+        String sql = "m." + column + (order.isAscending() ? " asc" : " desc");
+        switch (order.getNullHandling()) {
+            case NullsFirst:
+                return sql + " nulls first";
+            case NullsLast:
+                return sql + " nulls last";
+            default:
+                return sql;
+        }
+    }
+}
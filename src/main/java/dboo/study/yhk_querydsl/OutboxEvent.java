@@ -0,0 +1,46 @@
+package dboo.study.yhk_querydsl;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Member 변경 이벤트 (트랜잭셔널 아웃박스)
+ * 엔티티 변경과 같은 트랜잭션에서 저장되고, OutboxRelay 가 발행 후 publishedAt 을 채운다.
+ */
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString(of = {"id", "type", "memberId", "age", "teamId"})
+public class OutboxEvent {
+
+    @Id @GeneratedValue
+    @Column(name = "outbox_event_id")
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    private OutboxEventType type;
+
+    private Long memberId;
+
+    private Integer age;
+
+    private Long teamId;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime publishedAt;
+
+    public OutboxEvent(OutboxEventType type, Long memberId, Integer age, Long teamId) {
+        this.type = type;
+        this.memberId = memberId;
+        this.age = age;
+        this.teamId = teamId;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public void published(LocalDateTime publishedAt) {
+        this.publishedAt = publishedAt;
+    }
+}
@@ -0,0 +1,5 @@
+package dboo.study.yhk_querydsl;
+
+public enum OutboxEventType {
+    MEMBER_CREATED, MEMBER_AGE_CHANGED, MEMBER_TEAM_CHANGED
+}
@@ -0,0 +1,167 @@
+package dboo.study.yhk_querydsl;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.LockOptions;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.LockModeType;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static dboo.study.yhk_querydsl.QOutboxEvent.outboxEvent;
+
+/**
+ * 발행되지 않은 OutboxEvent 를 배치로 읽어서 OutboxSink 들에 넘긴다.
+ *
+ * - 배치는 for update skip locked 로 가져오므로 릴레이를 여러 인스턴스에서 돌려도 같은 행을 동시에 잡지 않는다.
+ * - sink 발행 후 같은 트랜잭션에서 publishedAt 을 채운다. 커밋 전에 실패하면 다음 폴링에서 다시 발행된다. (at-least-once)
+ * - 발행된 지 outbox.relay.retention (기본 7일) 이 지난 행은 purgePublished 로 지운다.
+ * - outbox.relay.enabled=true 일 때만 Scheduling 이 주기적으로 폴링 / 정리한다.
+ */
+@Slf4j
+@Component
+public class OutboxRelay {
+
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectProvider<OutboxSink> sinks;
+    private final int batchSize;
+    private final Duration retention;
+
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong purgedCount = new AtomicLong();
+    private volatile long lagMillis;
+
+    public OutboxRelay(JPAQueryFactory queryFactory,
+                       PlatformTransactionManager transactionManager,
+                       ObjectProvider<OutboxSink> sinks,
+                       @Value("${outbox.relay.batch-size:100}") int batchSize,
+                       @Value("${outbox.relay.retention:7d}") Duration retention) {
+        this.queryFactory = queryFactory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.sinks = sinks;
+        this.batchSize = batchSize;
+        this.retention = retention;
+    }
+
+    public void relay() {
+        try {
+            while (relayOnce() == batchSize) {
+                // 밀려 있으면 바로 다음 배치
+            }
+        } catch (RuntimeException e) {
+            failureCount.incrementAndGet();
+            log.warn("outbox relay failed", e);
+        }
+    }
+
+    /**
+     * @return 발행한 이벤트 수
+     */
+    public int relayOnce() {
+        Integer relayed = transactionTemplate.execute(status -> {
+            List<OutboxEvent> batch = queryFactory
+                    .selectFrom(outboxEvent)
+                    .where(outboxEvent.publishedAt.isNull())
+                    .orderBy(outboxEvent.id.asc())
+                    .limit(batchSize)
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .setHint("javax.persistence.lock.timeout", LockOptions.SKIP_LOCKED)
+                    .fetch();
+            if (batch.isEmpty()) {
+                lagMillis = 0;
+                return 0;
+            }
+
+            sinks.orderedStream().forEach(sink -> sink.publish(batch));
+
+            LocalDateTime now = LocalDateTime.now();
+            for (OutboxEvent event : batch) {
+                event.published(now);
+            }
+            lagMillis = Duration.between(batch.get(0).getCreatedAt(), now).toMillis();
+            publishedCount.addAndGet(batch.size());
+            batchCount.incrementAndGet();
+            return batch.size();
+        });
+        return relayed == null ? 0 : relayed;
+    }
+
+    /**
+     * @return 지운 이벤트 수
+     */
+    public long purgePublished() {
+        LocalDateTime threshold = LocalDateTime.now().minus(retention);
+        Long purged = transactionTemplate.execute(status -> queryFactory
+                .delete(outboxEvent)
+                .where(outboxEvent.publishedAt.lt(threshold))
+                .execute());
+        purgedCount.addAndGet(purged == null ? 0 : purged);
+        return purged == null ? 0 : purged;
+    }
+
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    public long getPurgedCount() {
+        return purgedCount.get();
+    }
+
+    /**
+     * 마지막 배치에서 가장 오래된 이벤트가 생성된 뒤 발행되기까지 걸린 시간
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    // 폴링 작업 자체를 이 빈에 두어서, 다른 곳에서 스케줄링을 켜도 플래그 없이는 릴레이가 돌지 않는다.
+    @Lazy(false)
+    @Configuration
+    @EnableScheduling
+    @ConditionalOnProperty(name = "outbox.relay.enabled", havingValue = "true")
+    static class Scheduling {
+
+        private final OutboxRelay relay;
+
+        Scheduling(OutboxRelay relay) {
+            this.relay = relay;
+        }
+
+        @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:1000}")
+        public void relay() {
+            relay.relay();
+        }
+
+        @Scheduled(fixedDelayString = "${outbox.relay.purge-interval-ms:3600000}")
+        public void purge() {
+            try {
+                relay.purgePublished();
+            } catch (RuntimeException e) {
+                log.warn("outbox purge failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package dboo.study.yhk_querydsl;
+
+import java.util.List;
+
+/**
+ * OutboxRelay 가 이벤트를 넘겨주는 발행 대상 (캐시, 읽기 모델 등)
+ * 최소 한 번 전달(at-least-once)이므로 같은 이벤트를 다시 받을 수 있다. id 로 중복을 걸러야 한다.
+ */
+public interface OutboxSink {
+
+    void publish(List<OutboxEvent> events);
+}
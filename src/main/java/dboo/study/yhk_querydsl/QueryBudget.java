@@ -0,0 +1,37 @@
+package dboo.study.yhk_querydsl;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * 쿼리 분류(queryClass)별 예산 (GovernedQueryFactory)
+ * - timeoutMillis : javax.persistence.query.timeout. Hibernate 는 초 단위로 반올림하므로 초 단위로 올림해서 적용한다. (700ms -> 1초)
+ * - maxRows : 넘으면 결과를 버리고 바로 실패
+ * - maxConcurrent / maxQueued / maxWaitMillis : 동시 실행 수 제한(bulkhead). 대기열이 차거나 대기 시간이 지나면 거절
+ */
+@Getter
+@Builder
+public class QueryBudget {
+
+    private final String queryClass;
+
+    @Builder.Default
+    private final int timeoutMillis = 3_000;
+
+    @Builder.Default
+    private final int maxRows = 10_000;
+
+    @Builder.Default
+    private final int maxConcurrent = 10;
+
+    @Builder.Default
+    private final int maxQueued = 10;
+
+    @Builder.Default
+    private final long maxWaitMillis = 100;
+
+    // 500ms 미만이 0초(타임아웃 없음)로 반올림되지 않도록 올림
+    public int getTimeoutSeconds() {
+        return (int) Math.ceil(timeoutMillis / 1000.0);
+    }
+}
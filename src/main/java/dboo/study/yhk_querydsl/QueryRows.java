@@ -0,0 +1,89 @@
+package dboo.study.yhk_querydsl;
+
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.NumberExpression;
+import com.querydsl.core.types.dsl.SimpleExpression;
+import com.querydsl.jpa.impl.JPAQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.query.Query;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import java.util.function.Consumer;
+
+/**
+ * Tuple 없이 두 컬럼 프로젝션을 한 줄씩 콜백으로 받는다.
+ *
+ * select(a, b) 는 행마다 Tuple 을 만들고, tuple.get(expr) 로 프로젝션 목록을 뒤져서 값을 꺼낸다.
+ * 여기서는 Expressions.list 로 프로젝션을 묶어 Hibernate ScrollableResults 의 Object[] 를 그대로 스크롤하며
+ * 인덱스로 꺼내고, 숫자 컬럼은 int / long / double 로 풀어서 넘긴다. 결과 List 도 만들지 않는다.
+ *
+ * ex) QueryRows.forEachInt(queryFactory.from(member), member.username, member.age,
+ *         (username, age) -> ...);
+ *
+ * 숫자 컬럼이 null 이면 0 으로 넘긴다.
+ * 트랜잭션 안에서 호출해야 한다. 스크롤 중인 커넥션을 트랜잭션이 끝날 때 돌려받기 때문이다.
+ */
+public final class QueryRows {
+
+    // PostgreSQL 드라이버는 fetchSize 가 있어야 커서로 나눠 가져온다. 없으면 결과 전체를 메모리에 올린다.
+    private static final int FETCH_SIZE = 1_000;
+
+    @FunctionalInterface
+    public interface ObjIntRow<A> {
+        void accept(A first, int second);
+    }
+
+    @FunctionalInterface
+    public interface ObjLongRow<A> {
+        void accept(A first, long second);
+    }
+
+    @FunctionalInterface
+    public interface ObjDoubleRow<A> {
+        void accept(A first, double second);
+    }
+
+    private QueryRows() {
+    }
+
+    public static <A> void forEachInt(JPAQuery<?> query, SimpleExpression<A> first,
+            NumberExpression<? extends Number> second, ObjIntRow<A> row) {
+        scroll(query, first, second, values -> row.accept(first.getType().cast(values[0]),
+                values[1] == null ? 0 : ((Number) values[1]).intValue()));
+    }
+
+    public static <A> void forEachLong(JPAQuery<?> query, SimpleExpression<A> first,
+            NumberExpression<? extends Number> second, ObjLongRow<A> row) {
+        scroll(query, first, second, values -> row.accept(first.getType().cast(values[0]),
+                values[1] == null ? 0L : ((Number) values[1]).longValue()));
+    }
+
+    public static <A> void forEachDouble(JPAQuery<?> query, SimpleExpression<A> first,
+            NumberExpression<? extends Number> second, ObjDoubleRow<A> row) {
+        scroll(query, first, second, values -> row.accept(first.getType().cast(values[0]),
+                values[1] == null ? 0d : ((Number) values[1]).doubleValue()));
+    }
+
+    // FactoryExpression(QTuple) 이 아닌 프로젝션이라 결과 변환 없이 행마다 Object[] 가 그대로 넘어온다.
+    // QueryDSL 의 iterate() 는 여러 컬럼이어도 첫 컬럼만 돌려주므로 Hibernate 쿼리를 직접 스크롤한다.
+    private static void scroll(JPAQuery<?> query, SimpleExpression<?> first,
+            NumberExpression<? extends Number> second, Consumer<Object[]> row) {
+        // 공유 EntityManager 는 트랜잭션 밖에서 scroll 하면 EntityManager 와 커넥션을 닫지 않는다.
+        Assert.state(TransactionSynchronizationManager.isActualTransactionActive(),
+                "QueryRows 는 트랜잭션 안에서 호출해야 합니다.");
+        ScrollableResults results = query.select(Expressions.list(Object[].class, first, second))
+                .createQuery()
+                .unwrap(Query.class)
+                .setFetchSize(FETCH_SIZE)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next()) {
+                row.accept(results.get());
+            }
+        } finally {
+            results.close();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package dboo.study.yhk_querydsl;
+
+/**
+ * MemberQueryRepository 조회 방식
+ * - MANAGED : 기본. 영속성 컨텍스트에 올리고 flush 때 변경 감지
+ * - READ_ONLY : 영속성 컨텍스트에는 올리지만 읽기 전용(스냅샷 없음, 변경 감지 제외), 조회 중 flush 하지 않음
+ * - STATELESS : StatelessSession 으로 조회. 영속성 컨텍스트에 올리지 않고 지연 로딩도 되지 않는다.
+ */
+public enum ReadMode {
+    MANAGED, READ_ONLY, STATELESS
+}
@@ -0,0 +1,159 @@
+package dboo.study.yhk_querydsl;
+
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.QueryModifiers;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Path;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.beans.PropertyAccessorFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 테넌트 단위 샤딩용 JPAQueryFactory 라우터
+ *
+ * 샤드 키는 테넌트 값(팀 이름 등)이고, 같은 테넌트의 Team / Member 는 항상 같은 샤드에 저장한다고 가정한다.
+ * team_id 는 샤드마다 각자의 hibernate_sequence 로 만들어지므로 샤드 키로 쓸 수 없고,
+ * 샤드를 넘어서는 유일하지 않다. 여러 샤드의 결과를 합칠 때는 (테넌트, id) 로 구분해야 한다.
+ *
+ * - shardFactory(key) : 저장할 때 쓸 샤드의 EntityManagerFactory
+ * - onShard(key, query) : 한 테넌트의 조회
+ * - fetchAll : 모든 샤드에 같은 쿼리를 병렬로 보내고 결과를 합친다. (scatter-gather)
+ *   orderBy 가 있으면 합친 결과를 같은 순서로 다시 정렬하고, limit / offset 은 합친 뒤에 적용한다.
+ *   병합 정렬은 조회 대상 자체(select(member.age)...orderBy(member.age)) 또는
+ *   조회 엔티티의 직접 프로퍼티(selectFrom(member).orderBy(member.age))로만 할 수 있다.
+ * - gather : 샤드별 결과를 merge 로 합친다. ex) 전체 max(age) = 샤드별 max(age) 의 max
+ *
+ * 조회마다 EntityManager 를 열고 닫으므로 결과 엔티티는 준영속 상태다. (지연 로딩 불가)
+ */
+public class ShardedQueryFactory {
+
+    private final List<EntityManagerFactory> shards;
+    private final ExecutorService executor;
+
+    public ShardedQueryFactory(List<EntityManagerFactory> shards, ExecutorService executor) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("샤드가 하나 이상 필요합니다.");
+        }
+        this.shards = List.copyOf(shards);
+        this.executor = executor;
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    public int shardOf(String tenantKey) {
+        return Math.floorMod(tenantKey.hashCode(), shards.size());
+    }
+
+    public EntityManagerFactory shardFactory(String tenantKey) {
+        return shards.get(shardOf(tenantKey));
+    }
+
+    public <R> R onShard(String tenantKey, Function<JPAQueryFactory, R> query) {
+        return query(shardFactory(tenantKey), query);
+    }
+
+    public <T> List<T> fetchAll(Function<JPAQueryFactory, JPAQuery<T>> query) {
+        AtomicReference<QueryMetadata> metadata = new AtomicReference<>();
+        List<T> merged = gather(shard -> {
+            JPAQuery<T> shardQuery = query.apply(shard);
+            QueryModifiers modifiers = shardQuery.getMetadata().getModifiers();
+            metadata.set(shardQuery.getMetadata().clone());
+            // 전체에서 offset + limit 안에 드는 행은 각 샤드에서도 offset + limit 안에 든다.
+            if (modifiers.getLimit() != null) {
+                shardQuery.limit(offset(modifiers) + modifiers.getLimit());
+            }
+            if (modifiers.getOffset() != null) {
+                shardQuery.offset(0);
+            }
+            return shardQuery.fetch();
+        }, (left, right) -> {
+            List<T> concat = new ArrayList<>(left.size() + right.size());
+            concat.addAll(left);
+            concat.addAll(right);
+            return concat;
+        });
+
+        if (!metadata.get().getOrderBy().isEmpty()) {
+            merged.sort(comparator(metadata.get()));
+        }
+        QueryModifiers modifiers = metadata.get().getModifiers();
+        int from = (int) Math.min(offset(modifiers), merged.size());
+        int to = modifiers.getLimit() == null ? merged.size() : (int) Math.min(from + modifiers.getLimit(), merged.size());
+        return new ArrayList<>(merged.subList(from, to));
+    }
+
+    public <R> R gather(Function<JPAQueryFactory, R> perShard, BinaryOperator<R> merge) {
+        List<CompletableFuture<R>> futures = shards.stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> query(shard, perShard), executor))
+                .collect(Collectors.toList());
+
+        R result = null;
+        for (CompletableFuture<R> future : futures) {
+            R value = future.join();
+            if (value == null) {
+                continue;
+            }
+            result = result == null ? value : merge.apply(result, value);
+        }
+        return result;
+    }
+
+    private static long offset(QueryModifiers modifiers) {
+        return modifiers.getOffset() == null ? 0 : modifiers.getOffset();
+    }
+
+    // DB(PostgreSQL) 기본과 같이 null 은 asc 에서 마지막, desc 에서 처음
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparator<Object> comparator(QueryMetadata metadata) {
+        Comparator<Object> result = null;
+        for (OrderSpecifier<?> order : metadata.getOrderBy()) {
+            Function<Object, Comparable> sortKey = sortKey(metadata.getProjection(), order.getTarget());
+            Comparator<Comparable> values = order.isAscending()
+                    ? Comparator.<Comparable>naturalOrder()
+                    : Comparator.<Comparable>reverseOrder();
+            boolean nullsFirst = order.getNullHandling() == OrderSpecifier.NullHandling.NullsFirst
+                    || (order.getNullHandling() == OrderSpecifier.NullHandling.Default && !order.isAscending());
+            Comparator<Object> next = Comparator.comparing(sortKey,
+                    nullsFirst ? Comparator.nullsFirst(values) : Comparator.nullsLast(values));
+            result = result == null ? next : result.thenComparing(next);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Function<Object, Comparable> sortKey(Expression<?> projection, Expression<?> target) {
+        if (target.equals(projection)) {
+            return row -> (Comparable) row;
+        }
+        if (target instanceof Path && projection.equals(((Path<?>) target).getMetadata().getParent())) {
+            String property = ((Path<?>) target).getMetadata().getName();
+            return row -> (Comparable) PropertyAccessorFactory.forDirectFieldAccess(row).getPropertyValue(property);
+        }
+        throw new IllegalArgumentException("샤드 결과를 병합 정렬할 수 없는 정렬 조건입니다. : " + target);
+    }
+
+    // EntityManager 는 스레드에 안전하지 않으므로 조회마다 새로 열고 닫는다.
+    private <R> R query(EntityManagerFactory shard, Function<JPAQueryFactory, R> query) {
+        EntityManager em = shard.createEntityManager();
+        try {
+            return query.apply(new JPAQueryFactory(em));
+        } finally {
+            em.close();
+        }
+    }
+}
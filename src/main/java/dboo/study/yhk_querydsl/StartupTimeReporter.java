@@ -0,0 +1,50 @@
+package dboo.study.yhk_querydsl;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+
+import static dboo.study.yhk_querydsl.QMember.member;
+
+/**
+ * 기동 시간 측정용 (startup.report=true)
+ * JVM 시작 시점부터 애플리케이션 준비, 첫 쿼리 완료까지 걸린 시간을 로그로 남긴다.
+ * startup.exit=true 이면 측정 후 바로 종료한다. (gradle startupCold / startupCds 태스크 참고)
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "startup.report", havingValue = "true")
+public class StartupTimeReporter {
+
+    private final JPAQueryFactory queryFactory;
+    private final ApplicationContext context;
+    private final Environment environment;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void report() {
+        long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+        long ready = System.currentTimeMillis() - jvmStart;
+
+        Long count = queryFactory
+                .select(member.count())
+                .from(member)
+                .fetchOne();
+        long firstQuery = System.currentTimeMillis() - jvmStart;
+
+        log.info("startup ready = {}ms, first query = {}ms (members = {})", ready, firstQuery, count);
+
+        if (environment.getProperty("startup.exit", Boolean.class, false)) {
+            System.exit(SpringApplication.exit(context, () -> 0));
+        }
+    }
+}
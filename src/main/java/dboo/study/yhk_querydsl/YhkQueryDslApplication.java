@@ -1,7 +1,11 @@
 package dboo.study.yhk_querydsl;
 
+import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+
+import javax.persistence.EntityManager;
 
 @SpringBootApplication
 public class YhkQueryDslApplication {
@@ -10,4 +14,9 @@ public class YhkQueryDslApplication {
         SpringApplication.run(YhkQueryDslApplication.class, args);
     }
 
+    @Bean
+    JPAQueryFactory jpaQueryFactory(EntityManager em) {
+        return new JPAQueryFactory(em);
+    }
+
 }
@@ -0,0 +1,18 @@
+create sequence hibernate_sequence start 1 increment 1;
+
+create table team (
+    team_id bigint not null,
+    name    varchar(255),
+    primary key (team_id)
+);
+
+create table member (
+    member_id bigint  not null,
+    age       integer not null,
+    username  varchar(255),
+    team_id   bigint,
+    primary key (member_id)
+);
+
+alter table member
+    add constraint fk_member_team foreign key (team_id) references team;
@@ -0,0 +1,12 @@
+create table outbox_event (
+    outbox_event_id bigint not null,
+    type            varchar(255),
+    member_id       bigint,
+    age             integer,
+    team_id         bigint,
+    created_at      timestamp,
+    published_at    timestamp,
+    primary key (outbox_event_id)
+);
+
+create index ix_outbox_event_unpublished on outbox_event (outbox_event_id) where published_at is null;
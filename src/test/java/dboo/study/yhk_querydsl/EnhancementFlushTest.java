@@ -0,0 +1,108 @@
+package dboo.study.yhk_querydsl;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.engine.spi.ManagedEntity;
+import org.hibernate.engine.spi.SelfDirtinessTracker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import javax.transaction.Transactional;
+import java.util.List;
+
+import static dboo.study.yhk_querydsl.QMember.member;
+import static dboo.study.yhk_querydsl.QTeam.team;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 바이트코드 향상(build.gradle hibernate.enhance) 확인 및 flush 비용 측정
+ */
+@SpringBootTest
+@Transactional
+public class EnhancementFlushTest {
+
+    static final int MEMBER_COUNT = 10_000;
+
+    @Autowired
+    EntityManager em;
+
+    @PersistenceUnit
+    EntityManagerFactory emf;
+
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    public void before() {
+        queryFactory = new JPAQueryFactory(em);
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        for (int i = 0; i < MEMBER_COUNT; i++) {
+            em.persist(new Member("member" + i, i % 100, teamA));
+            if (i % 1_000 == 0) {
+                em.flush();
+            }
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void enhanced() throws Exception {
+        assertThat(ManagedEntity.class).isAssignableFrom(Member.class);
+        assertThat(SelfDirtinessTracker.class).isAssignableFrom(Member.class);
+        assertThat(SelfDirtinessTracker.class).isAssignableFrom(Team.class);
+    }
+
+    /**
+     * 회원이 많은 팀에 대량으로 배정할 때 team.members 를 초기화하지 않는지, 배정 비용은 얼마인지
+     * 연관관계 관리(enableAssociationManagement)를 켜면 배정마다 컬렉션을 로딩하고 훑어서 O(n^2) 이 된다.
+     */
+    @Test
+    public void batchChangeTeam() throws Exception {
+        Team teamA = queryFactory.selectFrom(team).where(team.name.eq("teamA")).fetchOne();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1_000; i++) {
+            em.persist(new Member("batch" + i, 20, teamA));
+        }
+        long assignMicros = (System.nanoTime() - start) / 1_000;
+
+        System.out.println("assign 1000 members to a team of " + MEMBER_COUNT + " = " + assignMicros + "us");
+        assertThat(emf.getPersistenceUnitUtil().isLoaded(teamA, "members")).isFalse();
+    }
+
+    /**
+     * 전체를 읽고 1%만 수정했을 때 flush 시간과 엔티티당 메모리
+     * 향상 전 수치는 build.gradle 의 enableDirtyTracking 을 false 로 두고 같은 테스트를 돌려 비교한다.
+     */
+    @Test
+    public void flushCost() throws Exception {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+
+        List<Member> result = queryFactory.selectFrom(member).fetch();
+
+        System.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+
+        for (int i = 0; i < result.size(); i += 100) {
+            result.get(i).setAge(200);
+        }
+
+        long start = System.nanoTime();
+        em.flush();
+        long flushMicros = (System.nanoTime() - start) / 1_000;
+
+        System.out.println("managed = " + result.size()
+                + ", bytes per entity = " + (heapAfter - heapBefore) / result.size()
+                + ", flush = " + flushMicros + "us");
+
+        Long changed = queryFactory.select(member.count()).from(member).where(member.age.eq(200)).fetchOne();
+        assertThat(changed).isEqualTo(MEMBER_COUNT / 100);
+    }
+}
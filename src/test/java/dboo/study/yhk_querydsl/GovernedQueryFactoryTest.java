@@ -0,0 +1,157 @@
+package dboo.study.yhk_querydsl;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static dboo.study.yhk_querydsl.QMember.member;
+import static dboo.study.yhk_querydsl.QOutboxEvent.outboxEvent;
+import static dboo.study.yhk_querydsl.QTeam.team;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 여러 스레드에서 조회하므로 테스트 데이터를 커밋하고 끝나면 지운다.
+ */
+@SpringBootTest
+public class GovernedQueryFactoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    JPAQueryFactory queryFactory;
+    TransactionTemplate tx;
+    GovernedQueryFactory governed;
+
+    @BeforeEach
+    public void before(){
+        queryFactory = new JPAQueryFactory(em);
+        tx = new TransactionTemplate(transactionManager);
+        governed = new GovernedQueryFactory(queryFactory, List.of(
+                QueryBudget.builder().queryClass("cheap").timeoutMillis(1_000).maxRows(100).maxConcurrent(6).build(),
+                QueryBudget.builder().queryClass("expensive").timeoutMillis(5_000).maxRows(10_000)
+                        .maxConcurrent(2).maxQueued(2).maxWaitMillis(50).build()));
+
+        tx.executeWithoutResult(status -> {
+            for (int t = 0; t < 200; t++) {
+                Team newTeam = new Team("team" + t);
+                em.persist(newTeam);
+                for (int i = 0; i < 10; i++) {
+                    em.persist(new Member(i == 0 ? "team" + t : "member" + t + "_" + i, i * 10, newTeam));
+                }
+            }
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        tx.executeWithoutResult(status -> {
+            queryFactory.delete(outboxEvent).execute();
+            queryFactory.delete(member).execute();
+            queryFactory.delete(team).execute();
+        });
+    }
+
+    @Test
+    public void maxRows() throws Exception {
+        assertThatThrownBy(() -> governed.fetch("cheap", queryFactory -> queryFactory.selectFrom(member)))
+                .isInstanceOf(GovernedQueryFactory.QueryRowLimitExceededException.class);
+        assertThat(governed.fetch("cheap", queryFactory -> queryFactory.selectFrom(member).limit(10))).hasSize(10);
+        assertThat(governed.metrics("cheap").getRowLimitExceeded().get()).isEqualTo(1);
+    }
+
+    @Test
+    public void unknownQueryClass() throws Exception {
+        assertThatThrownBy(() -> governed.fetch("unknown", queryFactory -> queryFactory.selectFrom(member)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void timeoutRoundsUpToSeconds() throws Exception {
+        assertThat(QueryBudget.builder().queryClass("fast").timeoutMillis(200).build().getTimeoutSeconds()).isEqualTo(1);
+        assertThat(QueryBudget.builder().queryClass("slow").timeoutMillis(1_500).build().getTimeoutSeconds()).isEqualTo(2);
+        assertThatThrownBy(() -> new GovernedQueryFactory(queryFactory,
+                List.of(QueryBudget.builder().queryClass("none").timeoutMillis(0).build())))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * 싼 쿼리만 돌릴 때와, 세타 조인(비싼 쿼리)을 동시에 몰아칠 때 싼 쿼리의 p99 비교
+     */
+    @Test
+    public void cheapQueryP99UnderLoad() throws Exception {
+        List<Long> baseline = runCheap(400);
+
+        ExecutorService flood = Executors.newFixedThreadPool(8);
+        List<Future<?>> expensive = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            expensive.add(flood.submit(() -> {
+                for (int j = 0; j < 20; j++) {
+                    try {
+                        governed.fetch("expensive", queryFactory -> queryFactory
+                                .select(member)
+                                .from(member, team)
+                                .where(member.username.eq(team.name)));
+                    } catch (GovernedQueryFactory.QueryRejectedException e) {
+                        // 거절된 쿼리는 버린다.
+                    }
+                }
+            }));
+        }
+        List<Long> underLoad = runCheap(400);
+        for (Future<?> future : expensive) {
+            future.get();
+        }
+        flood.shutdown();
+        flood.awaitTermination(1, TimeUnit.MINUTES);
+
+        GovernedQueryFactory.Metrics metrics = governed.metrics("expensive");
+        System.out.println("cheap p99 baseline = " + p99(baseline) + "us, under load = " + p99(underLoad) + "us"
+                + ", expensive executed = " + metrics.getExecuted() + ", rejected = " + metrics.getRejected());
+        assertThat(metrics.getExecuted().get() + metrics.getRejected().get()).isEqualTo(8 * 20);
+    }
+
+    private List<Long> runCheap(int count) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String username = "member" + (i % 200) + "_1";
+            futures.add(executor.submit(() -> {
+                long start = System.nanoTime();
+                governed.fetch("cheap", queryFactory -> queryFactory
+                        .selectFrom(member)
+                        .where(member.username.eq(username)));
+                return (System.nanoTime() - start) / 1_000;
+            }));
+        }
+        List<Long> latencies = new ArrayList<>();
+        for (Future<Long> future : futures) {
+            latencies.add(future.get());
+        }
+        executor.shutdown();
+        return latencies;
+    }
+
+    private long p99(List<Long> latencies) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return sorted.get((int) Math.ceil(sorted.size() * 0.99) - 1);
+    }
+}
@@ -0,0 +1,188 @@
+package dboo.study.yhk_querydsl;
+
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static dboo.study.yhk_querydsl.QMember.member;
+import static dboo.study.yhk_querydsl.QOutboxEvent.outboxEvent;
+import static dboo.study.yhk_querydsl.QTeam.team;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 병렬 청크 조회는 별도 EntityManager 를 쓰기 때문에 테스트 데이터를 커밋하고 끝나면 지운다.
+ * 회원 100,000명은 클래스 전체에서 한번만 넣고, 이 테스트가 만든 팀과 그 회원만 지운다.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class MultiKeyLookupTest {
+
+    static final int MEMBER_COUNT = 100_000;
+    static final String TEAM_NAME = "multiKeyLookup";
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    MemberQueryRepository memberQueryRepository;
+
+    JPAQueryFactory queryFactory;
+    TransactionTemplate tx;
+    List<Long> ids;
+
+    @BeforeAll
+    public void before(){
+        queryFactory = new JPAQueryFactory(em);
+        tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            Team teamA = new Team(TEAM_NAME);
+            em.persist(teamA);
+            for (int i = 0; i < MEMBER_COUNT; i++) {
+                em.persist(new Member("member" + i, i % 100, teamA));
+                if (i % 1_000 == 0) {
+                    em.flush();
+                    em.clear();
+                    teamA = em.merge(teamA);
+                }
+            }
+        });
+        ids = queryFactory
+                .select(member.id)
+                .from(member)
+                .where(member.team.name.eq(TEAM_NAME))
+                .orderBy(member.id.asc())
+                .fetch();
+    }
+
+    @AfterAll
+    public void after() {
+        tx.executeWithoutResult(status -> {
+            queryFactory.delete(outboxEvent)
+                    .where(outboxEvent.memberId.in(JPAExpressions
+                            .select(member.id)
+                            .from(member)
+                            .where(member.team.name.eq(TEAM_NAME))))
+                    .execute();
+            queryFactory.delete(member)
+                    .where(member.team.id.in(JPAExpressions
+                            .select(team.id)
+                            .from(team)
+                            .where(team.name.eq(TEAM_NAME))))
+                    .execute();
+            queryFactory.delete(team).where(team.name.eq(TEAM_NAME)).execute();
+        });
+    }
+
+    /**
+     * IN 절 패딩으로 키 3개와 4개는 같은 쿼리 플랜을 쓴다.
+     */
+    @Test
+    public void inClausePadding() throws Exception {
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        memberQueryRepository.findByIds(ids.subList(0, 4));
+
+        statistics.clear();
+        memberQueryRepository.findByIds(ids.subList(0, 3));
+
+        assertThat(statistics.getQueryPlanCacheMissCount()).isZero();
+    }
+
+    @Test
+    public void findByIds() throws Exception {
+        List<Long> keys = ids.subList(0, 3_000);
+
+        assertThat(memberQueryRepository.findByIds(keys)).hasSize(3_000);
+        assertThat(memberQueryRepository.findByIds(keys, KeyLookup.builder().parallel(true).build())).hasSize(3_000);
+        assertThat(memberQueryRepository.findByIds(keys, KeyLookup.builder().postgresArray(true).build())).hasSize(3_000);
+    }
+
+    /**
+     * 커넥션 풀 크기(기본 10)보다 많은 호출이 동시에 병렬 조회해도 커넥션을 서로 기다리며 막히지 않는다.
+     */
+    @Test
+    public void concurrentParallelCallers() throws Exception {
+        List<Long> keys = ids.subList(0, 3_000);
+        KeyLookup parallel = KeyLookup.builder().parallel(true).build();
+
+        ExecutorService callers = Executors.newFixedThreadPool(24);
+        List<Future<List<Member>>> futures = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            futures.add(callers.submit(() -> memberQueryRepository.findByIds(keys, parallel)));
+        }
+        for (Future<List<Member>> future : futures) {
+            assertThat(future.get(1, TimeUnit.MINUTES)).hasSize(3_000);
+        }
+        callers.shutdown();
+    }
+
+    @Test
+    public void invalidChunkSize() throws Exception {
+        for (int chunkSize : new int[]{0, -1, KeyLookup.MAX_CHUNK_SIZE + 1}) {
+            KeyLookup lookup = KeyLookup.builder().chunkSize(chunkSize).build();
+            assertThatThrownBy(() -> memberQueryRepository.findByIds(ids.subList(0, 10), lookup))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    public void findByUsernames() throws Exception {
+        List<Member> result = memberQueryRepository.findByUsernames(
+                List.of("member1", "member2", "member3", "member1", "noSuchMember"));
+
+        assertThat(result).extracting("username").containsExactlyInAnyOrder("member1", "member2", "member3");
+    }
+
+    /**
+     * 키 1 ~ 100,000 개 조회 시간과 쿼리 플랜 캐시 hit / miss
+     */
+    @Test
+    public void benchmark() throws Exception {
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        KeyLookup[] lookups = {
+                KeyLookup.DEFAULT,
+                KeyLookup.builder().parallel(true).build(),
+                KeyLookup.builder().postgresArray(true).build()};
+        String[] names = {"padded IN", "padded IN parallel", "any(array)"};
+
+        for (int l = 0; l < lookups.length; l++) {
+            statistics.clear();
+            for (int size : new int[]{1, 7, 100, 777, 1_000, 10_000, 54_321, 100_000}) {
+                List<Long> keys = IntStream.range(0, size)
+                        .mapToObj(i -> ids.get((int) ((long) i * ids.size() / size)))
+                        .collect(Collectors.toList());
+
+                long start = System.nanoTime();
+                int found = memberQueryRepository.findByIds(keys, lookups[l]).size();
+                long millis = (System.nanoTime() - start) / 1_000_000;
+
+                System.out.println(names[l] + " keys = " + size + ", " + millis + "ms");
+                assertThat(found).isEqualTo(size);
+            }
+            System.out.println(names[l] + " plan cache hit = " + statistics.getQueryPlanCacheHitCount()
+                    + ", miss = " + statistics.getQueryPlanCacheMissCount());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package dboo.study.yhk_querydsl;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.List;
+
+import static dboo.study.yhk_querydsl.QOutboxEvent.outboxEvent;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {"outbox.enabled=true", "outbox.relay.retention=0s"})
+@Transactional
+public class OutboxTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    OutboxRelay relay;
+
+    @Autowired
+    ApplicationContext context;
+
+    @Autowired
+    CollectingSink sink;
+
+    JPAQueryFactory queryFactory;
+
+    Team teamA;
+    Team teamB;
+
+    @BeforeEach
+    public void before(){
+        queryFactory = new JPAQueryFactory(em);
+        sink.events.clear();
+        teamA = new Team("teamA");
+        teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        em.flush();
+    }
+
+    @Test
+    public void recordChanges() throws Exception {
+        Member member1 = new Member("member1", 10, teamA);
+        em.persist(member1);
+        em.flush();
+
+        member1.setAge(11);
+        member1.changeTeam(teamB);
+        em.flush();
+
+        List<OutboxEventType> types = queryFactory
+                .select(outboxEvent.type)
+                .from(outboxEvent)
+                .where(outboxEvent.memberId.eq(member1.getId()))
+                .orderBy(outboxEvent.id.asc())
+                .fetch();
+
+        assertThat(types).containsExactly(
+                OutboxEventType.MEMBER_CREATED,
+                OutboxEventType.MEMBER_AGE_CHANGED,
+                OutboxEventType.MEMBER_TEAM_CHANGED);
+    }
+
+    @Test
+    public void relay() throws Exception {
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamB));
+        em.flush();
+
+        while (relay.relayOnce() > 0) {
+        }
+        em.flush();
+
+        assertThat(sink.events).extracting("type")
+                .containsExactly(OutboxEventType.MEMBER_CREATED, OutboxEventType.MEMBER_CREATED);
+        assertThat(queryFactory.selectFrom(outboxEvent).where(outboxEvent.publishedAt.isNull()).fetch()).isEmpty();
+    }
+
+    @Test
+    public void purgePublished() throws Exception {
+        em.persist(new Member("member1", 10, teamA));
+        em.flush();
+        while (relay.relayOnce() > 0) {
+        }
+        em.flush();
+        em.clear();
+
+        // retention 0초 : 발행된 이벤트는 바로 지울 수 있다.
+        Thread.sleep(10);
+        assertThat(relay.purgePublished()).isEqualTo(1);
+        assertThat(queryFactory.selectFrom(outboxEvent).fetch()).isEmpty();
+    }
+
+    /**
+     * 릴레이 폴링은 outbox.relay.enabled 로만 켜진다.
+     */
+    @Test
+    public void schedulingDisabledByDefault() throws Exception {
+        assertThat(context.getBeansOfType(OutboxRelay.Scheduling.class)).isEmpty();
+    }
+
+    /**
+     * 아웃박스 쓰기 비용(회원 insert 당)과 릴레이 처리량
+     */
+    @Test
+    public void writeOverheadAndRelayThroughput() throws Exception {
+        int count = 5_000;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            em.persist(new Member("bulk" + i, i % 100, teamA));
+        }
+        em.flush();
+        long insertNanos = System.nanoTime() - start;
+        em.clear();
+
+        start = System.nanoTime();
+        while (relay.relayOnce() > 0) {
+            em.flush();
+            em.clear();
+        }
+        long relayNanos = System.nanoTime() - start;
+
+        System.out.println("insert + outbox = " + insertNanos / count / 1_000 + "us/member"
+                + ", relay = " + (long) (count / (relayNanos / 1_000_000_000d)) + " events/sec"
+                + ", lag = " + relay.getLagMillis() + "ms");
+        assertThat(sink.events).hasSize(count);
+    }
+
+    @TestConfiguration
+    static class SinkConfig {
+        @Bean
+        CollectingSink collectingSink() {
+            return new CollectingSink();
+        }
+    }
+
+    static class CollectingSink implements OutboxSink {
+        final List<OutboxEvent> events = new ArrayList<>();
+
+        @Override
+        public void publish(List<OutboxEvent> events) {
+            this.events.addAll(events);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package dboo.study.yhk_querydsl;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static dboo.study.yhk_querydsl.QMember.member;
+import static dboo.study.yhk_querydsl.QTeam.team;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+public class QueryRowsTest {
+
+    @Autowired
+    EntityManager em;
+
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    public void before(){
+        queryFactory = new JPAQueryFactory(em);
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        Member member3 = new Member("member3", 30, teamB);
+        Member member4 = new Member("member4", 40, teamB);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.persist(member4);
+    }
+
+    @Test
+    public void projection() throws Exception {
+        List<String> usernames = new ArrayList<>();
+        int[] ageSum = {0};
+
+        QueryRows.forEachInt(queryFactory.from(member).orderBy(member.username.asc()),
+                member.username, member.age,
+                (username, age) -> {
+                    usernames.add(username);
+                    ageSum[0] += age;
+                });
+
+        assertThat(usernames).containsExactly("member1", "member2", "member3", "member4");
+        assertThat(ageSum[0]).isEqualTo(100);
+    }
+
+    @Test
+    public void group() throws Exception {
+        List<String> teamNames = new ArrayList<>();
+        List<Double> avgAges = new ArrayList<>();
+
+        QueryRows.forEachDouble(queryFactory
+                        .from(member)
+                        .join(member.team, team)
+                        .groupBy(team.name)
+                        .orderBy(team.name.asc()),
+                team.name, member.age.avg(),
+                (teamName, avgAge) -> {
+                    teamNames.add(teamName);
+                    avgAges.add(avgAge);
+                });
+
+        assertThat(teamNames).containsExactly("teamA", "teamB");
+        assertThat(avgAges).containsExactly(15d, 35d);
+    }
+
+    @Test
+    public void requiresTransaction() throws Exception {
+        // 테스트 트랜잭션은 스레드에 묶여 있으므로 다른 스레드에서 호출한다.
+        CompletableFuture<Void> outside = CompletableFuture.runAsync(() -> QueryRows.forEachInt(
+                queryFactory.from(member), member.username, member.age, (username, age) -> {
+                }));
+
+        assertThatThrownBy(outside::get).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Tuple 프로젝션과 콜백 방식의 행당 할당량 비교 (현재 스레드 기준)
+     */
+    @Test
+    public void allocationPerRow() throws Exception {
+        Team teamC = new Team("teamC");
+        em.persist(teamC);
+        for (int i = 0; i < 20_000; i++) {
+            em.persist(new Member("bulk" + i, i % 100, teamC));
+        }
+        em.flush();
+        em.clear();
+        long rows = queryFactory.select(member.count()).from(member).fetchOne();
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long tupleSum = 0;
+        for (Tuple tuple : queryFactory.select(member.username, member.age).from(member).fetch()) {
+            tupleSum += tuple.get(member.age);
+        }
+        long tupleBytes = threads.getThreadAllocatedBytes(threadId) - before;
+
+        long[] rowSum = {0};
+        before = threads.getThreadAllocatedBytes(threadId);
+        QueryRows.forEachInt(queryFactory.from(member), member.username, member.age,
+                (username, age) -> rowSum[0] += age);
+        long rowBytes = threads.getThreadAllocatedBytes(threadId) - before;
+
+        System.out.println("tuple = " + tupleBytes / rows + " bytes/row, callback = " + rowBytes / rows + " bytes/row");
+        assertThat(rowSum[0]).isEqualTo(tupleSum);
+    }
+}
@@ -0,0 +1,171 @@
+package dboo.study.yhk_querydsl;
+
+import com.querydsl.jpa.JPQLQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static dboo.study.yhk_querydsl.QMember.member;
+import static dboo.study.yhk_querydsl.QTeam.team;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+public class ReadModeTest {
+
+    static final String COMMITTED_TEAM = "readModeCommitted";
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberQueryRepository memberQueryRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    public void before(){
+        queryFactory = new JPAQueryFactory(em);
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        Member member3 = new Member("member3", 30, teamB);
+        Member member4 = new Member("member4", 40, teamB);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.persist(member4);
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void readOnly() throws Exception {
+        List<Member> result = memberQueryRepository.findAll(ReadMode.READ_ONLY);
+        result.forEach(m -> m.setAge(99));
+        em.flush();
+        em.clear();
+
+        // 읽기 전용 엔티티는 변경 감지 대상이 아니다.
+        assertThat(queryFactory.selectFrom(member).where(member.age.eq(99)).fetch()).isEmpty();
+    }
+
+    @Test
+    public void stateless() throws Exception {
+        List<Member> result = memberQueryRepository.fetch(ReadMode.STATELESS,
+                query -> query.select(member).from(member).where(member.age.goe(30)));
+
+        assertThat(result).extracting("username").containsExactlyInAnyOrder("member3", "member4");
+        assertThat(result).noneMatch(em::contains);
+    }
+
+    /**
+     * 트랜잭션 없이 호출해도 리포지토리가 읽기 전용 트랜잭션을 연다.
+     * 테스트 트랜잭션은 스레드에 묶여 있으므로 다른 스레드에서 호출하고, 그 스레드에서 보이도록 데이터는 따로 커밋한다.
+     */
+    @Test
+    public void withoutTransaction() throws Exception {
+        TransactionTemplate newTx = new TransactionTemplate(transactionManager);
+        newTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        newTx.executeWithoutResult(status -> {
+            Team committedTeam = new Team(COMMITTED_TEAM);
+            em.persist(committedTeam);
+            em.persist(new Member("committed1", 10, committedTeam));
+            em.persist(new Member("committed2", 20, committedTeam));
+        });
+        try {
+            for (ReadMode mode : ReadMode.values()) {
+                // 트랜잭션 없음
+                List<Member> result = CompletableFuture
+                        .supplyAsync(() -> memberQueryRepository.fetch(mode, committedMembers()))
+                        .get();
+                assertThat(result).extracting("username").containsExactlyInAnyOrder("committed1", "committed2");
+
+                // 호출한 쪽 트랜잭션 안에서 모드별 영속 상태 확인
+                CompletableFuture.runAsync(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    List<Member> members = memberQueryRepository.fetch(mode, committedMembers());
+                    Session session = em.unwrap(Session.class);
+                    assertThat(members).hasSize(2);
+                    switch (mode) {
+                        case READ_ONLY:
+                            assertThat(members).allMatch(em::contains).allMatch(session::isReadOnly);
+                            break;
+                        case STATELESS:
+                            assertThat(members).noneMatch(em::contains);
+                            break;
+                        default:
+                            assertThat(members).allMatch(em::contains).noneMatch(session::isReadOnly);
+                    }
+                })).get();
+            }
+        } finally {
+            newTx.executeWithoutResult(status -> {
+                queryFactory.delete(member)
+                        .where(member.username.in("committed1", "committed2"))
+                        .execute();
+                queryFactory.delete(team).where(team.name.eq(COMMITTED_TEAM)).execute();
+            });
+        }
+    }
+
+    private Function<JPQLQuery<?>, JPQLQuery<Member>> committedMembers() {
+        return query -> query.select(member).from(member).where(member.username.startsWith("committed"));
+    }
+
+    /**
+     * 회원 100,000명 조회 시 모드별 힙 사용량(회원당)과 flush 시간
+     */
+    @Test
+    public void heapAndFlushPerMode() throws Exception {
+        Team bulkTeam = new Team("bulk");
+        em.persist(bulkTeam);
+        for (int i = 0; i < 100_000; i++) {
+            em.persist(new Member("bulk" + i, i % 100, bulkTeam));
+            if (i % 1_000 == 0) {
+                em.flush();
+                em.clear();
+                bulkTeam = em.merge(bulkTeam);
+            }
+        }
+        em.flush();
+        em.clear();
+
+        Runtime runtime = Runtime.getRuntime();
+        for (ReadMode mode : ReadMode.values()) {
+            System.gc();
+            long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+
+            List<Member> result = memberQueryRepository.findAll(mode);
+
+            System.gc();
+            long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+
+            long start = System.nanoTime();
+            em.flush();
+            long flushMillis = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.println(mode + " : members = " + result.size()
+                    + ", bytes per member = " + (heapAfter - heapBefore) / result.size()
+                    + ", flush = " + flushMillis + "ms");
+            em.clear();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package dboo.study.yhk_querydsl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static dboo.study.yhk_querydsl.QMember.member;
+import static dboo.study.yhk_querydsl.QTeam.team;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 로컬 H2 인스턴스 여러개를 샤드로 띄워서 라우팅 / scatter-gather 확인
+ * 샤드 키는 팀 이름(테넌트)
+ */
+public class ShardedQueryFactoryTest {
+
+    List<EntityManagerFactory> factories = new ArrayList<>();
+    ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void after() {
+        factories.forEach(EntityManagerFactory::close);
+        executor.shutdown();
+    }
+
+    @Test
+    public void routing() throws Exception {
+        ShardedQueryFactory sharded = createShards(2);
+        saveTeam(sharded, "teamA", 10, 20);
+        saveTeam(sharded, "teamB", 30, 40);
+
+        List<Member> result = sharded.onShard("teamA", shard -> shard
+                .selectFrom(member)
+                .join(member.team, team)
+                .where(team.name.eq("teamA"))
+                .fetch());
+
+        assertThat(result).extracting("username").containsExactlyInAnyOrder("teamA_0", "teamA_1");
+    }
+
+    /**
+     * 전체에서 나이가 가장 많은 회원 : 샤드별 max(age) 를 합친 뒤 다시 각 샤드에서 조회
+     */
+    @Test
+    public void scatterGatherMax() throws Exception {
+        ShardedQueryFactory sharded = createShards(3);
+        saveTeam(sharded, "teamA", 10, 20);
+        saveTeam(sharded, "teamB", 30, 40);
+        saveTeam(sharded, "teamC", 50, 15);
+
+        Integer maxAge = sharded.gather(
+                shard -> shard.select(member.age.max()).from(member).fetchOne(),
+                Math::max);
+        List<Member> result = sharded.fetchAll(shard -> shard.selectFrom(member).where(member.age.eq(maxAge)));
+
+        assertThat(maxAge).isEqualTo(50);
+        assertThat(result).extracting("username").containsExactly("teamC_0");
+    }
+
+    /**
+     * 정렬 + 페이징 쿼리는 샤드 결과를 합친 뒤 다시 정렬하고 limit / offset 을 적용한다.
+     */
+    @Test
+    public void orderedLimitedFetchAll() throws Exception {
+        ShardedQueryFactory sharded = createShards(3);
+        saveTeam(sharded, "teamA", 10, 60);
+        saveTeam(sharded, "teamB", 30, 40);
+        saveTeam(sharded, "teamC", 50, 20);
+
+        List<Member> top = sharded.fetchAll(shard -> shard
+                .selectFrom(member)
+                .orderBy(member.age.desc())
+                .limit(3));
+        List<Integer> page = sharded.fetchAll(shard -> shard
+                .select(member.age)
+                .from(member)
+                .orderBy(member.age.asc())
+                .offset(2)
+                .limit(2));
+
+        assertThat(top).extracting("age").containsExactly(60, 50, 40);
+        assertThat(page).containsExactly(30, 40);
+        assertThatThrownBy(() -> sharded.fetchAll(shard -> shard
+                .selectFrom(member)
+                .orderBy(member.team.name.asc())))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * 여러 스레드에서 동시에 scatter 해도 샤드별 EntityManager 를 공유하지 않는다.
+     */
+    @Test
+    public void concurrentScatter() throws Exception {
+        ShardedQueryFactory sharded = createShards(2);
+        saveTeam(sharded, "teamA", 10, 20);
+        saveTeam(sharded, "teamB", 30, 40);
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        List<Future<List<Member>>> futures = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            futures.add(callers.submit(() -> sharded.fetchAll(shard -> shard.selectFrom(member))));
+        }
+        for (Future<List<Member>> future : futures) {
+            assertThat(future.get()).hasSize(4);
+        }
+        callers.shutdown();
+    }
+
+    /**
+     * 같은 데이터(팀 64개, 팀당 200명)를 샤드 1 / 2 / 4 개로 나눴을 때 scatter 쿼리 처리량
+     */
+    @Test
+    public void throughputByShardCount() throws Exception {
+        for (int shardCount : new int[]{1, 2, 4}) {
+            ShardedQueryFactory sharded = createShards(shardCount);
+            for (int t = 0; t < 64; t++) {
+                int[] ages = new int[200];
+                for (int i = 0; i < ages.length; i++) {
+                    ages[i] = (t + i) % 100;
+                }
+                saveTeam(sharded, "team" + t, ages);
+            }
+
+            int queries = 200;
+            long start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                int age = i % 100;
+                sharded.gather(shard -> shard.select(member.count()).from(member).where(member.age.goe(age)).fetchOne(),
+                        Long::sum);
+            }
+            double seconds = (System.nanoTime() - start) / 1_000_000_000d;
+
+            System.out.println("shards = " + shardCount + ", queries/sec = " + (long) (queries / seconds));
+            assertThat(sharded.gather(shard -> shard.select(member.count()).from(member).fetchOne(), Long::sum))
+                    .isEqualTo(64 * 200L);
+
+            after();
+            factories.clear();
+            executor = Executors.newCachedThreadPool();
+        }
+    }
+
+    private void saveTeam(ShardedQueryFactory sharded, String teamName, int... ages) {
+        EntityManager em = sharded.shardFactory(teamName).createEntityManager();
+        em.getTransaction().begin();
+        Team newTeam = new Team(teamName);
+        em.persist(newTeam);
+        for (int i = 0; i < ages.length; i++) {
+            em.persist(new Member(teamName + "_" + i, ages[i], newTeam));
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private ShardedQueryFactory createShards(int shardCount) {
+        for (int i = 0; i < shardCount; i++) {
+            DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                    "jdbc:h2:mem:shard" + i + ";DB_CLOSE_DELAY=-1", "sa", "");
+            dataSource.setDriverClassName("org.h2.Driver");
+
+            LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+            factoryBean.setDataSource(dataSource);
+            factoryBean.setPackagesToScan(Member.class.getPackage().getName());
+            factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            factoryBean.setJpaPropertyMap(Map.of("hibernate.hbm2ddl.auto", "create-drop"));
+            factoryBean.setPersistenceUnitName("shard" + i);
+            factoryBean.afterPropertiesSet();
+
+            factories.add(factoryBean.getObject());
+        }
+        return new ShardedQueryFactory(factories, executor);
+    }
+}
@@ -0,0 +1,110 @@
+package dboo.study.yhk_querydsl;
+
+import com.querydsl.core.types.Projections;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.List;
+
+import static dboo.study.yhk_querydsl.QMember.member;
+import static dboo.study.yhk_querydsl.QTeam.team;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+public class TopNPerTeamTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberQueryRepository memberQueryRepository;
+
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    public void before(){
+        queryFactory = new JPAQueryFactory(em);
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        Member member3 = new Member("member3", 30, teamB);
+        Member member4 = new Member("member4", 40, teamB);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.persist(member4);
+        em.persist(new Member("noTeam", 100));
+        em.flush();
+    }
+
+    @Test
+    public void oldestPerTeam() throws Exception {
+        List<MemberDto> result = memberQueryRepository.topNPerTeam(member.age.desc(), 1);
+
+        assertThat(result).containsExactly(new MemberDto("member2", 20), new MemberDto("member4", 40));
+    }
+
+    @Test
+    public void youngestTwoPerTeam() throws Exception {
+        List<MemberDto> result = memberQueryRepository.topNPerTeam(member.age.asc(), 2);
+
+        assertThat(result).extracting("username").containsExactly("member1", "member2", "member3", "member4");
+    }
+
+    @Test
+    public void orderByOtherEntity() throws Exception {
+        assertThatThrownBy(() -> memberQueryRepository.topNPerTeam(team.name.asc(), 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * 팀 10,000개(팀당 5명)에서 팀별 상위 3명 : 팀마다 쿼리 vs 윈도우 함수 한번
+     */
+    @Test
+    public void compareWithPerTeamLoop() throws Exception {
+        for (int t = 0; t < 10_000; t++) {
+            Team bulkTeam = new Team("bulk" + t);
+            em.persist(bulkTeam);
+            for (int i = 0; i < 5; i++) {
+                em.persist(new Member("bulk" + t + "_" + i, (t + i * 7) % 100, bulkTeam));
+            }
+            if (t % 500 == 0) {
+                em.flush();
+                em.clear();
+            }
+        }
+        em.flush();
+        em.clear();
+
+        long start = System.nanoTime();
+        List<MemberDto> loop = new ArrayList<>();
+        for (Long teamId : queryFactory.select(team.id).from(team).orderBy(team.id.asc()).fetch()) {
+            loop.addAll(queryFactory
+                    .select(Projections.constructor(MemberDto.class, member.username, member.age))
+                    .from(member)
+                    .where(member.team.id.eq(teamId))
+                    .orderBy(member.age.desc(), member.id.asc())
+                    .limit(3)
+                    .fetch());
+        }
+        long loopMillis = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        List<MemberDto> window = memberQueryRepository.topNPerTeam(member.age.desc(), 3);
+        long windowMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("per-team loop = " + loopMillis + "ms, row_number = " + windowMillis + "ms");
+        assertThat(window).containsExactlyElementsOf(loop);
+    }
+}